@@ -4,6 +4,12 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 import static de.heisluft.cli.simpleopt.OptionParseException.Reason.*;
 
@@ -14,30 +20,162 @@ import static de.heisluft.cli.simpleopt.OptionParseException.Reason.*;
  * to the parser, which the parser will then validate the arg string against. Note: if the subcommand
  * set is empty or the parsed argument array does not contain a subcommand, the ParseResult will have
  * its subcommand set to {@code null.}
+ * <p>
+ * Options may be registered, replaced and removed while other threads are parsing. Each parse
+ * operates on the set of options that was current when it started.
  *
  * @since 0.0.1
  */
 public final class OptionParser {
-  /** The set of all recognised options. */
+  /** The current snapshot of all recognised options, replaced as a whole on modification. */
   @NotNull
-  private final Set<OptionDefinition<?>> optionDefinitions = new HashSet<>();
+  private final AtomicReference<OptionRegistry> registry = new AtomicReference<>(OptionRegistry.EMPTY);
   /** The set of all recognised subcommands. */
   @NotNull
   private final List<SubCommand> subcommands;
+  /** The cache of successful parse results, {@code null} if result caching is disabled. */
+  @Nullable
+  private volatile ResultCache resultCache;
+  /** The number of parse invocations served from the result cache. */
+  @NotNull
+  private final AtomicLong cacheHits = new AtomicLong();
+  /** The number of parse invocations with caching enabled that had to be parsed in full. */
+  @NotNull
+  private final AtomicLong cacheMisses = new AtomicLong();
 
   /**
-   * Add Option definitions to the set of recognized options.
+   * Add Option definitions to the set of recognized options. Options with the same name as an
+   * already recognized option are ignored. Either all options are added or, if one of them is
+   * invalid, none.
    *
    * @param options the options to add
    */
   public final void addOptions(@NotNull OptionDefinition<?>... options) {
+    validate(options);
+    publish(r -> r.with(options, false));
+  }
+
+  /**
+   * Add Option definitions to the set of recognized options, replacing already recognized options
+   * of the same name. Either all options are added or, if one of them is invalid, none.
+   *
+   * @param options the options to add
+   *
+   * @since 0.4.0
+   */
+  public final void replaceOptions(@NotNull OptionDefinition<?>... options) {
+    validate(options);
+    publish(r -> r.with(options, true));
+  }
+
+  /**
+   * Remove Option definitions from the set of recognized options. Options are matched by name,
+   * options that are not recognized are ignored.
+   *
+   * @param options the options to remove
+   *
+   * @since 0.4.0
+   */
+  public final void removeOptions(@NotNull OptionDefinition<?>... options) {
+    publish(r -> r.without(options));
+  }
+
+  /**
+   * Atomically replaces the recognized options with a derived registry. If the registry changed,
+   * all cached parse results are discarded so that they no longer keep the replaced options and
+   * their callbacks reachable.
+   *
+   * @param change derives the new registry from the current one, may be invoked multiple times
+   */
+  private void publish(@NotNull UnaryOperator<OptionRegistry> change) {
+    OptionRegistry prev, next;
+    do {
+      prev = registry.get();
+      next = change.apply(prev);
+    } while(prev != next && !registry.compareAndSet(prev, next));
+    if(prev != next) invalidateResultCache();
+  }
+
+  /** Discards all cached parse results, keeping the cache enabled if it was. */
+  private void invalidateResultCache() {
+    ResultCache cache = resultCache;
+    if(cache != null) cache.entries.clear();
+  }
+
+  /**
+   * Checks that the given options can be registered with a parser.
+   *
+   * @param options the options to check
+   *
+   * @throws IllegalArgumentException if a valued option has no value converter
+   */
+  private static void validate(@NotNull OptionDefinition<?>[] options) {
     for(OptionDefinition<?> option : options) {
       if(option.takesValue && option.valueConverter == null)
         throw new IllegalArgumentException("Option " + option.name + " has no value converter");
-      optionDefinitions.add(option);
     }
   }
 
+  /**
+   * Enables caching of parse results for repeated invocations with identical argument vectors.
+   * About {@code maxEntries} results are kept. When the cache grows beyond that, the least recently
+   * used results are evicted in a batch, with recency tracked at millisecond granularity. Only
+   * successful parses are cached, parse errors are always re-evaluated. Any previously cached
+   * results are discarded. Modifying the recognized options discards all cached results as well.
+   * <p>
+   * If {@code replayCallbacks} is {@code true}, the callbacks of all set options are invoked again
+   * for a cached result, in the same order and with the same converted value instances as for the
+   * original parse, so callbacks must not mutate the values they receive. Otherwise, callbacks are
+   * invoked at most once per cached entry, i.e. whenever an argument vector has to be parsed in
+   * full: on its first parse, after its entry was evicted or invalidated and when multiple threads
+   * miss on it at the same time. Console warnings about unknown or ignored options are never
+   * repeated for cached results.
+   * <p>
+   * Cache hits take no lock, so concurrent parses of cached argument vectors do not serialize.
+   *
+   * @param maxEntries the maximum number of cached results, must be positive
+   * @param replayCallbacks whether to invoke option callbacks for cached results
+   *
+   * @throws IllegalArgumentException if {@code maxEntries} is not positive
+   *
+   * @since 0.4.0
+   */
+  public void enableResultCache(int maxEntries, boolean replayCallbacks) {
+    if(maxEntries <= 0) throw new IllegalArgumentException("Cache size must be positive, got " + maxEntries);
+    resultCache = new ResultCache(maxEntries, replayCallbacks);
+  }
+
+  /**
+   * Disables and discards the parse result cache. Hit and miss counters are left untouched.
+   *
+   * @since 0.4.0
+   */
+  public void disableResultCache() {
+    resultCache = null;
+  }
+
+  /**
+   * Returns the number of parse invocations that were served from the result cache.
+   *
+   * @return the cache hit count
+   *
+   * @since 0.4.0
+   */
+  public long getCacheHits() {
+    return cacheHits.get();
+  }
+
+  /**
+   * Returns the number of parse invocations that could not be served from an enabled result cache.
+   *
+   * @return the cache miss count
+   *
+   * @since 0.4.0
+   */
+  public long getCacheMisses() {
+    return cacheMisses.get();
+  }
+
   /**
    * Constructs a new OptionParser and hands to it a collection of available subcommands.
    *
@@ -62,9 +200,48 @@ public final class OptionParser {
    *
    * @throws OptionParseException if an error occurs during parsing, such as an option being defined
    * twice, an option not having a value when it requires one or a grouping conflict.
+   *
+   * @see #enableResultCache(int, boolean)
    */
-  @SuppressWarnings({"unchecked", "rawtypes"})
   public @NotNull OptionParseResult parse(@NotNull String... args) {
+    OptionRegistry snapshot = registry.get();
+    ResultCache cache = resultCache;
+    if(cache == null) return doParse(snapshot, args, null);
+    List<String> key = Collections.unmodifiableList(Arrays.asList(args.clone()));
+    CachedParse cached = cache.get(key);
+    // parsed against options that have changed since, possibly still in flight during the change
+    if(cached != null && cached.registry != snapshot) {
+      cache.entries.remove(key, cached);
+      cached = null;
+    }
+    if(cached != null) {
+      cacheHits.incrementAndGet();
+      if(cache.replayCallbacks) cached.replayCallbacks();
+      return cached.result;
+    }
+    cacheMisses.incrementAndGet();
+    Map<OptionDefinition<?>, Object> converted = new LinkedHashMap<>();
+    OptionParseResult result = doParse(snapshot, key.toArray(new String[0]), converted);
+    CachedParse entry = new CachedParse(snapshot, result, converted);
+    cache.put(key, entry);
+    // publish swaps the registry before clearing, so either this sees the change or the clear
+    // runs after the put; an outdated entry would otherwise keep the old options reachable
+    if(registry.get() != snapshot) cache.entries.remove(key, entry);
+    return result;
+  }
+
+  /**
+   * Performs the actual parsing, optionally recording the converted value of each accepted option
+   * in callback order so that callbacks can be replayed later.
+   *
+   * @param snapshot the recognized options to parse against
+   * @param args the CLI arguments to parse
+   * @param converted the map to record converted values in, may be {@code null}
+   *
+   * @return the parse result
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private @NotNull OptionParseResult doParse(@NotNull OptionRegistry snapshot, @NotNull String[] args, @Nullable Map<OptionDefinition<?>, Object> converted) {
     List<String> remainder = new ArrayList<>();
     Map<OptionDefinition, String> rawOptions = new HashMap<>();
     String subcommand = null;
@@ -72,7 +249,7 @@ public final class OptionParser {
     for(int i = 0; i < args.length; i++) {
       String arg = args[i];
       if(arg.startsWith("--")) {
-        for(OptionDefinition o : optionDefinitions) {
+        for(OptionDefinition o : snapshot.definitions) {
           if(arg.substring(2).startsWith(o.name)) {
             if(!o.takesValue) {
               if(!o.name.equals(arg.substring(2))) continue;
@@ -90,21 +267,19 @@ public final class OptionParser {
         System.out.println("Unknown long option supplied: '--" + arg + "'");
       } else if(arg.startsWith("-")) {
         boolean argumentDefined = false;
-        charLoop:
         for(char c : arg.substring(1).toCharArray()) {
-          for(OptionDefinition o : optionDefinitions) {
-            if(o.shorthand == c) {
-              if(rawOptions.containsKey(o)) throw new OptionParseException(DUPLICATE_OPTION, o.name);
-              if(o.takesValue) {
-                if(argumentDefined) throw new OptionParseException(ARG_GROUPING_CONFLICT, arg);
-                if(args.length == i + 1) throw new OptionParseException(MISSING_VALUE, o.name);
-                rawOptions.put(o, args[++i]);
-                argumentDefined = true;
-              } else rawOptions.put(o, null);
-              continue charLoop;
-            }
+          OptionDefinition o = snapshot.byShorthand(c);
+          if(o == null) {
+            System.out.println("Unknown short option supplied: '-" + c + "'");
+            continue;
           }
-          System.out.println("Unknown short option supplied: '-" + c + "'");
+          if(rawOptions.containsKey(o)) throw new OptionParseException(DUPLICATE_OPTION, o.name);
+          if(o.takesValue) {
+            if(argumentDefined) throw new OptionParseException(ARG_GROUPING_CONFLICT, arg);
+            if(args.length == i + 1) throw new OptionParseException(MISSING_VALUE, o.name);
+            rawOptions.put(o, args[++i]);
+            argumentDefined = true;
+          } else rawOptions.put(o, null);
         }
       } else {
         if(!subcommands.isEmpty()) {
@@ -126,11 +301,100 @@ public final class OptionParser {
       if(k.onDefinedCallBack != null) k.onDefinedCallBack.run();
       Object value = k.valueConverter != null ? k.valueConverter.apply(v) : v;
       if(k.valueCallback != null) k.valueCallback.accept(value);
+      if(converted != null) converted.put(k, value);
       optionValues.put(k, v);
     });
     return new OptionParseResult(optionValues, subcommand, remainder);
   }
 
+  /**
+   * An enabled parse result cache together with its configuration. Lookups are lock-free, eviction
+   * approximates LRU by access timestamps and is done by one thread at a time.
+   */
+  private static final class ResultCache {
+    /** The successful parse results, keyed by the content of the parsed argument vector. */
+    final @NotNull Map<List<String>, CachedParse> entries = new ConcurrentHashMap<>();
+    /** The number of entries above which eviction is triggered. */
+    final int maxEntries;
+    /** Whether option callbacks are replayed when a parse result is served from the cache. */
+    final boolean replayCallbacks;
+    /** Set while a thread is evicting entries. */
+    private final @NotNull AtomicBoolean evicting = new AtomicBoolean();
+
+    ResultCache(int maxEntries, boolean replayCallbacks) {
+      this.maxEntries = maxEntries;
+      this.replayCallbacks = replayCallbacks;
+    }
+
+    /**
+     * Looks up a cached result, marking it as recently used.
+     *
+     * @param key the argument vector to look up
+     *
+     * @return the cached result or {@code null} if there is none.
+     */
+    @Nullable CachedParse get(@NotNull List<String> key) {
+      CachedParse cached = entries.get(key);
+      if(cached != null) {
+        long now = System.nanoTime();
+        // only write on coarse changes so that threads hitting the same entry rarely share writes
+        if(now - cached.lastAccess > TimeUnit.MILLISECONDS.toNanos(1)) cached.lastAccess = now;
+      }
+      return cached;
+    }
+
+    /**
+     * Caches a result, evicting the least recently used entries if the cache has grown too large.
+     * A tenth of the capacity is evicted at once so that sorting by recency is amortized.
+     *
+     * @param key the parsed argument vector
+     * @param cached the result to cache
+     */
+    void put(@NotNull List<String> key, @NotNull CachedParse cached) {
+      entries.put(key, cached);
+      if(entries.size() <= maxEntries || !evicting.compareAndSet(false, true)) return;
+      try {
+        // access times change concurrently, so sort a copy and evict everything up to a threshold
+        long[] accessTimes = entries.values().stream().mapToLong(c -> c.lastAccess).toArray();
+        int excess = accessTimes.length - maxEntries + maxEntries / 10;
+        if(excess <= 0) return;
+        Arrays.sort(accessTimes);
+        long threshold = accessTimes[excess - 1];
+        entries.values().removeIf(c -> c.lastAccess <= threshold);
+      } finally {
+        evicting.set(false);
+      }
+    }
+  }
+
+  /** A cached parse result together with what is needed to replay its option callbacks. */
+  private static final class CachedParse {
+    /** The recognized options the result was parsed against. */
+    final @NotNull OptionRegistry registry;
+    /** The immutable parse result. */
+    final @NotNull OptionParseResult result;
+    /** The accepted options mapped to their converted values, in callback order. */
+    final @NotNull Map<OptionDefinition<?>, Object> converted;
+    /** The {@link System#nanoTime()} of the last access, used for eviction. */
+    volatile long lastAccess = System.nanoTime();
+
+    CachedParse(@NotNull OptionRegistry registry, @NotNull OptionParseResult result,
+        @NotNull Map<OptionDefinition<?>, Object> converted) {
+      this.registry = registry;
+      this.result = result;
+      this.converted = converted;
+    }
+
+    /** Invokes the callbacks of all accepted options just as the original parse did. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    void replayCallbacks() {
+      converted.forEach((k, value) -> {
+        if(k.onDefinedCallBack != null) k.onDefinedCallBack.run();
+        if(((OptionDefinition) k).valueCallback != null) ((OptionDefinition) k).valueCallback.accept(value);
+      });
+    }
+  }
+
   private static @NotNull StringBuilder wrapIndent(@NotNull StringBuilder out, int indent, int max) {
     int remain = out.length();
     int lastWrap = 0;
@@ -165,6 +429,7 @@ public final class OptionParser {
       }
     }
     sb.append("Options:\nOption");
+    Set<OptionDefinition<?>> optionDefinitions = registry.get().definitions;
     int maxLongLen = Math.max(optionDefinitions.stream().mapToInt(o -> 2 + o.name.length() + (o.takesValue ?  1 + o.description.argName.length() : 0)).max().orElse(0), "Option".length());
     int maxShortLen = Math.max(optionDefinitions.stream().mapToInt(o -> o.takesValue ? 3 + o.description.argName.length() : 2).max().orElse(0), "Shorthand".length());
     for(int i = 0; i < maxLongLen + 2 - "Option".length(); i++) sb.append(' ');
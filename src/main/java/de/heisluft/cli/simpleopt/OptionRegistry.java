@@ -0,0 +1,87 @@
+package de.heisluft.cli.simpleopt;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An immutable snapshot of the options recognised by an {@link OptionParser}. Modifications never
+ * alter a registry but produce a new one, so a parse can work on a consistent set of options
+ * without locking while options are being registered concurrently.
+ * <p>
+ * Options are kept in registration order. If several options share a shorthand, the shorthand
+ * refers to the one registered first. An option replacing another one of the same name takes over
+ * its position.
+ *
+ * @since 0.4.0
+ */
+final class OptionRegistry {
+  /** The registry without any options. */
+  static final @NotNull OptionRegistry EMPTY = new OptionRegistry(Collections.emptyMap());
+
+  /** The unmodifiable map of all recognised options by their long name, in registration order. */
+  private final @NotNull Map<String, OptionDefinition<?>> byName;
+  /** The unmodifiable set of all recognised options, in registration order. */
+  final @NotNull Set<OptionDefinition<?>> definitions;
+  /** The unmodifiable map of all recognised options by their shorthand. */
+  private final @NotNull Map<Character, OptionDefinition<?>> byShorthand;
+
+  /**
+   * Constructs a new registry from the given options. The map is taken over without copying and
+   * must not be modified afterwards.
+   *
+   * @param byName the recognised options by their long name, never {@code null}.
+   */
+  private OptionRegistry(@NotNull Map<String, OptionDefinition<?>> byName) {
+    this.byName = Collections.unmodifiableMap(byName);
+    this.definitions = Collections.unmodifiableSet(new LinkedHashSet<>(byName.values()));
+    Map<Character, OptionDefinition<?>> shorthands = new HashMap<>();
+    for(OptionDefinition<?> o : byName.values()) shorthands.putIfAbsent(o.shorthand, o);
+    this.byShorthand = Collections.unmodifiableMap(shorthands);
+  }
+
+  /**
+   * Looks up the option with the given shorthand.
+   *
+   * @param shorthand the shorthand to look up
+   *
+   * @return the matching option or {@code null} if no option uses this shorthand.
+   */
+  @Nullable OptionDefinition<?> byShorthand(char shorthand) {
+    return byShorthand.get(shorthand);
+  }
+
+  /**
+   * Derives a registry containing the given options in addition to the ones of this registry.
+   *
+   * @param options the options to add
+   * @param replace whether options take the place of already registered options of the same name
+   * instead of being ignored
+   *
+   * @return the derived registry, or this registry if nothing changed.
+   */
+  @NotNull OptionRegistry with(@NotNull OptionDefinition<?>[] options, boolean replace) {
+    Map<String, OptionDefinition<?>> next = new LinkedHashMap<>(byName);
+    boolean changed = false;
+    for(OptionDefinition<?> option : options) {
+      if(!replace && next.containsKey(option.name)) continue;
+      changed |= next.put(option.name, option) != option;
+    }
+    return changed ? new OptionRegistry(next) : this;
+  }
+
+  /**
+   * Derives a registry lacking the given options. Options are matched by name.
+   *
+   * @param options the options to remove
+   *
+   * @return the derived registry, or this registry if nothing changed.
+   */
+  @NotNull OptionRegistry without(@NotNull OptionDefinition<?>[] options) {
+    Map<String, OptionDefinition<?>> next = new LinkedHashMap<>(byName);
+    boolean changed = false;
+    for(OptionDefinition<?> option : options) changed |= next.remove(option.name) != null;
+    return changed ? new OptionRegistry(next) : this;
+  }
+}